@@ -0,0 +1,53 @@
+#!/usr/bin/env sh
+#
+# Measures time-to-first-processed-message for a given launch command.
+#
+# Publishes one trade to the inbound topic, starts the application and waits for
+# the "First inbound message processed" log line from KafkaListener.
+# Requires the local Kafka from src/main/java/com/example/trades/kafka/local/docker-compose.yml.
+#
+# Usage (run from the project root):
+#   # plain executable jar
+#   benchmark/time-to-first-message.sh java -jar target/trades-capture-service-0.0.1-SNAPSHOT.jar
+#
+#   # fast-start build (mvn -Pfast-start package)
+#   cd target/fast-start && ../../benchmark/time-to-first-message.sh \
+#       java -XX:SharedArchiveFile=application.jsa -Dspring.aot.enabled=true \
+#       -Dspring.profiles.active=dev,faststart -jar trades-capture-service-0.0.1-SNAPSHOT-app.jar
+
+set -eu
+
+if [ "$#" -eq 0 ]; then
+    echo "usage: $0 <java command...>" >&2
+    exit 1
+fi
+
+TOPIC="${INBOUND_TOPIC:-instructions.inbound}"
+TIMEOUT_SECONDS="${TIMEOUT_SECONDS:-120}"
+LOG_FILE="$(mktemp)"
+
+echo "{\"instructionId\":\"BENCH-$(date +%s)\",\"account_number\":\"123456789\",\"security_id\":\"ABC123\",\"trade_type\":\"Buy\",\"quantity\":\"100\",\"price\":\"10.5\"}" \
+    | docker exec -i kafka kafka-console-producer --bootstrap-server localhost:9092 --topic "$TOPIC" >/dev/null
+
+"$@" >"$LOG_FILE" 2>&1 &
+APP_PID=$!
+trap 'kill "$APP_PID" 2>/dev/null || true; rm -f "$LOG_FILE"' EXIT
+
+waited=0
+while [ "$waited" -lt "$TIMEOUT_SECONDS" ]; do
+    line="$(grep -m 1 "First inbound message processed" "$LOG_FILE" || true)"
+    if [ -n "$line" ]; then
+        echo "$line" | sed 's/.*First inbound message processed \([0-9]*\) ms.*/time-to-first-message: \1 ms/'
+        exit 0
+    fi
+    if ! kill -0 "$APP_PID" 2>/dev/null; then
+        echo "application exited before processing a message, log follows:" >&2
+        cat "$LOG_FILE" >&2
+        exit 1
+    fi
+    sleep 1
+    waited=$((waited + 1))
+done
+
+echo "no message processed within ${TIMEOUT_SECONDS}s" >&2
+exit 1
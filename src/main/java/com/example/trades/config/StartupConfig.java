@@ -0,0 +1,20 @@
+package com.example.trades.config;
+
+import com.example.trades.kafka.KafkaListener;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StartupConfig {
+
+    /**
+     * Keeps the inbound listener eager when lazy initialization is enabled,
+     * otherwise its @KafkaListener endpoint would never be registered and
+     * consumption would not start until something else touched the bean.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerKafkaListener() {
+        return LazyInitializationExcludeFilter.forBeanTypes(KafkaListener.class);
+    }
+}
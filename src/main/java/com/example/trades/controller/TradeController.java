@@ -1,28 +1,22 @@
 package com.example.trades.controller;
 
 import com.example.trades.model.PlatformTrade;
-import com.example.trades.model.TradeInstruction;
-import com.example.trades.service.TradeTransformationService;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.trades.service.FileIngestionService;
+import com.example.trades.service.UploadConflictException;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVRecord;
-import org.springframework.beans.factory.annotation.Value;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
-import java.util.*;
+import java.util.List;
+import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/trades")
@@ -30,81 +24,57 @@ import java.util.*;
 @Tag(name = "Trades", description = "Endpoints for uploading trade instructions")
 public class TradeController {
 
-    private final TradeTransformationService transformationService;
-    private final KafkaTemplate<Object, Object> kafkaTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String outboundTopic;
+    private static final Logger log = LoggerFactory.getLogger(TradeController.class);
+    private static final String UPLOAD_ID_HEADER = "X-Upload-Id";
 
-    public TradeController(TradeTransformationService transformationService,
-                           KafkaTemplate<Object, Object> kafkaTemplate,
-                           @Value("${app.kafka.outbound-topic:instructions.outbound}") String outboundTopic) {
-        this.transformationService = transformationService;
-        this.kafkaTemplate = kafkaTemplate;
-        this.outboundTopic = outboundTopic;
+    private final FileIngestionService ingestionService;
+
+    public TradeController(FileIngestionService ingestionService) {
+        this.ingestionService = ingestionService;
     }
 
-    @Operation(summary = "Upload trade instructions file (CSV or JSON Format)")
+    @Operation(summary = "Upload trade instructions file (CSV or JSON Format)",
+            description = "Pass an uploadId to make the upload resumable; re-sending a known uploadId with the same file "
+                    + "continues from its last checkpoint. Returns 409 if the id is in use or was used for a different file")
     @PostMapping(value = "/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
-    public ResponseEntity<List<PlatformTrade>> upload(@RequestParam("file") MultipartFile file) throws IOException {
+    public ResponseEntity<List<PlatformTrade>> upload(@RequestParam("file") MultipartFile file,
+                                                      @RequestParam(value = "uploadId", required = false) String uploadId) throws IOException {
         String filename = file.getOriginalFilename();
-        if (filename == null) {
+        if (filename == null || !FileIngestionService.isSupported(filename)) {
             return ResponseEntity.badRequest().build();
         }
 
-        String lower = filename.toLowerCase(Locale.ROOT);
-        List<PlatformTrade> result;
-
-        if (lower.endsWith(".csv")) {
-            result = processCsv(file);
-        } else if (lower.endsWith(".json")) {
-            result = processJson(file);
-        } else {
+        if (uploadId == null) {
+            uploadId = UUID.randomUUID().toString();
+        } else if (!FileIngestionService.isValidUploadId(uploadId)) {
             return ResponseEntity.badRequest().build();
         }
 
-        return ResponseEntity.ok(result);
-    }
-
-    private List<PlatformTrade> processCsv(MultipartFile file) throws IOException {
-        List<PlatformTrade> trades = new ArrayList<>();
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(file.getInputStream(), StandardCharsets.UTF_8))) {
-            CSVParser parser = CSVFormat.DEFAULT
-                    .withFirstRecordAsHeader()
-                    .withIgnoreEmptyLines()
-                    .parse(reader);
-
-            for (CSVRecord record : parser) {
-                Map<String, Object> raw = new HashMap<>();
-                raw.put("instructionId", record.get("instructionId"));
-                raw.put("account_number", record.get("account_number"));
-                raw.put("security_id", record.get("security_id"));
-                raw.put("trade_type", record.get("trade_type"));
-                raw.put("quantity", record.get("quantity"));
-                raw.put("price", record.get("price"));
-                //raw.put("tradeTimestamp", record.get("tradeTimestamp"));
-
-                TradeInstruction canonical = transformationService.toCanonical(raw);
-                PlatformTrade accountingTrade = transformationService.toAccountingJson(canonical);
-                String json = objectMapper.writeValueAsString(accountingTrade);
-                kafkaTemplate.send(outboundTopic, canonical.getInstructionId(), json);
-                trades.add(accountingTrade);
-            }
+        // The id goes back on failures too, so the client can resume or re-send with it
+        try {
+            List<PlatformTrade> result = ingestionService.ingest(uploadId, file);
+            return ResponseEntity.ok().header(UPLOAD_ID_HEADER, uploadId).body(result);
+        } catch (UploadConflictException ex) {
+            log.warn(ex.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).header(UPLOAD_ID_HEADER, uploadId).build();
+        } catch (IOException | RuntimeException ex) {
+            log.error("Failed to ingest upload '{}'", uploadId, ex);
+            return ResponseEntity.internalServerError().header(UPLOAD_ID_HEADER, uploadId).build();
         }
-        return trades;
     }
 
-    private List<PlatformTrade> processJson(MultipartFile file) throws IOException {
-        List<PlatformTrade> trades = new ArrayList<>();
-        List<Map<String, Object>> rawList = objectMapper.readValue(
-                file.getInputStream(), new TypeReference<List<Map<String, Object>>>() {});
-        for (Map<String, Object> raw : rawList) {
-            TradeInstruction canonical = transformationService.toCanonical(raw);
-            PlatformTrade accountingTrade = transformationService.toAccountingJson(canonical);
-            String json = objectMapper.writeValueAsString(accountingTrade);
-            kafkaTemplate.send(outboundTopic, canonical.getInstructionId(), json);
-            trades.add(accountingTrade);
+    @Operation(summary = "Resume a spooled upload from its last checkpoint",
+            description = "Returns only the trades published by this call")
+    @PostMapping("/uploads/{uploadId}/resume")
+    public ResponseEntity<List<PlatformTrade>> resume(@PathVariable("uploadId") String uploadId) throws IOException {
+        if (!FileIngestionService.isValidUploadId(uploadId) || !ingestionService.isKnownUpload(uploadId)) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            return ResponseEntity.ok(ingestionService.resume(uploadId));
+        } catch (UploadConflictException ex) {
+            log.warn(ex.getMessage());
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         }
-        return trades;
     }
 }
@@ -2,18 +2,26 @@ package com.example.trades.kafka;
 
 import com.example.trades.model.PlatformTrade;
 import com.example.trades.model.TradeInstruction;
+import com.example.trades.pipeline.TradePublishingPipeline;
 import com.example.trades.service.TradeTransformationService;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
-import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Component;
 
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Component
 public class KafkaListener {
@@ -22,21 +30,46 @@ public class KafkaListener {
     private static final int MAX_RETRIES = 3;
 
     private final TradeTransformationService transformationService;
-    private final KafkaTemplate<Object, Object> kafkaTemplate;
+    private final TradePublishingPipeline publishingPipeline;
     private final ObjectMapper objectMapper = new ObjectMapper();
-    private final String outboundTopic;
+    private final AtomicBoolean firstMessageProcessed = new AtomicBoolean();
 
     public KafkaListener(TradeTransformationService transformationService,
-                         KafkaTemplate<Object, Object> kafkaTemplate,
-                         @Value("${app.kafka.outbound-topic:instructions.outbound}") String outboundTopic) {
+                         TradePublishingPipeline publishingPipeline) {
         this.transformationService = transformationService;
-        this.kafkaTemplate = kafkaTemplate;
-        this.outboundTopic = outboundTopic;
+        this.publishingPipeline = publishingPipeline;
     }
 
-    @org.springframework.kafka.annotation.KafkaListener(topics = "${app.kafka.inbound-topic:instructions.inbound}", groupId = "trades-capture-service")
-    public void listen(String message) throws IOException {
+    /**
+     * Transforms each polled message on the listener thread and hands it to the publishing
+     * pipeline, so the next message is transformed while earlier ones are being sent.
+     * Returns only once every send is acknowledged, keeping offsets committed after delivery.
+     * A failing record is reported by its index, so the error handler commits the records
+     * before it and retries or recovers only that record.
+     */
+    @org.springframework.kafka.annotation.KafkaListener(topics = "${app.kafka.inbound-topic:instructions.inbound}", groupId = "trades-capture-service", batch = "true")
+    public void listen(List<String> messages) {
+        List<Publication> publications = new ArrayList<>(messages.size());
+
+        for (int index = 0; index < messages.size(); index++) {
+            try {
+                publications.add(transformAndPublish(index, messages.get(index)));
+            } catch (IOException | RuntimeException ex) {
+                // Earlier records are already in the pipeline; they must be delivered before
+                // their offsets can be committed
+                awaitAll(publications);
+                throw new BatchListenerFailedException("Failed to process inbound message", ex, index);
+            }
+        }
+
+        awaitAll(publications);
+
+        if (!messages.isEmpty() && firstMessageProcessed.compareAndSet(false, true)) {
+            logTimeToFirstMessage();
+        }
+    }
 
+    private Publication transformAndPublish(int index, String message) throws IOException {
         Map<String, Object> raw = objectMapper.readValue(message, new TypeReference<Map<String, Object>>() {});
 
         // Transform to canonical TradeInstruction (also stored in in-memory)
@@ -45,48 +78,78 @@ public class KafkaListener {
         //  Transform to outbound PlatformTrade wrapper
         PlatformTrade accountingTrade = transformationService.toAccountingJson(canonical);
 
-        //  Serialize to JSON
-        String json = objectMapper.writeValueAsString(accountingTrade);
+        //  Serialize and send on the pipeline's publishing threads
+        String key = canonical.getInstructionId();
+        return new Publication(index, key, accountingTrade, publishingPipeline.publish(key, accountingTrade));
+    }
 
-        //  Send to outbound topic with retry
-        sendWithRetry(outboundTopic, canonical.getInstructionId(), json);
+    /**
+     * Waits for publications in batch order; the first one that cannot be delivered fails the
+     * batch at its index.
+     */
+    private void awaitAll(List<Publication> publications) {
+        for (Publication publication : publications) {
+            try {
+                awaitWithRetry(publication);
+            } catch (IllegalStateException ex) {
+                throw new BatchListenerFailedException("Failed to publish inbound message", ex, publication.index());
+            }
+        }
     }
 
     /**
-     * Sends a message to Kafka with simple retry logic.
-       */
-    private void sendWithRetry(String topic, String key, String payload) {
-        int attempt = 0;
+     * Logs time-to-first-processed-message, measured from JVM start.
+     * Used by benchmark/time-to-first-message.sh to compare startup modes.
+     */
+    private void logTimeToFirstMessage() {
+        long elapsed = System.currentTimeMillis() - ManagementFactory.getRuntimeMXBean().getStartTime();
+        log.info("First inbound message processed {} ms after JVM start", elapsed);
+    }
 
-        while (attempt < MAX_RETRIES) {
+    /**
+     * Waits for a pipelined send, republishing with simple retry logic if it failed.
+     */
+    private void awaitWithRetry(Publication publication) {
+        String key = publication.key();
+        CompletableFuture<SendResult<Object, Object>> result = publication.result();
+        int attempt = 1;
+
+        while (true) {
             try {
-                attempt++;
-                log.info("Sending message to topic='{}', key='{}', attempt={}", topic, key, attempt);
+                result.get(publishingPipeline.getSendTimeoutMillis(), TimeUnit.MILLISECONDS);
 
-                kafkaTemplate.send(topic, key, payload).get();
-
-                log.info("Successfully sent message to topic='{}', key='{}'", topic, key);
+                log.info("Successfully sent message with key='{}', attempt={}", key, attempt);
                 return; // success, exit method
 
-            } catch (Exception ex) {
-                log.warn("Failed to send message to topic='{}', key='{}' on attempt {}/{}",
-                        topic, key, attempt, MAX_RETRIES, ex);
+            } catch (ExecutionException | TimeoutException ex) {
+                Throwable cause = ex instanceof ExecutionException ? ex.getCause() : ex;
+                log.warn("Failed to send message with key='{}' on attempt {}/{}",
+                        key, attempt, MAX_RETRIES, cause);
 
                 if (attempt >= MAX_RETRIES) {
                     // All retries failed – propagate so error handling
-                    log.error("Exhausted retries sending message to topic='{}', key='{}'. Giving up.", topic, key);
-                    throw new IllegalStateException("Failed to send Kafka message after retries", ex);
+                    log.error("Exhausted retries sending message with key='{}'. Giving up.", key);
+                    throw new IllegalStateException("Failed to send Kafka message after retries", cause);
                 }
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for Kafka send", ie);
+            }
 
-
-                try {
-                    TimeUnit.SECONDS.sleep(attempt);
-                } catch (InterruptedException ie) {
-                    Thread.currentThread().interrupt();
-                    log.error("Retry sleep interrupted. Aborting retries for key='{}'", key);
-                    throw new IllegalStateException("Retry interrupted while sending Kafka message", ie);
-                }
+            try {
+                TimeUnit.SECONDS.sleep(attempt);
+            } catch (InterruptedException ie) {
+                Thread.currentThread().interrupt();
+                log.error("Retry sleep interrupted. Aborting retries for key='{}'", key);
+                throw new IllegalStateException("Retry interrupted while sending Kafka message", ie);
             }
+
+            attempt++;
+            log.info("Republishing message with key='{}', attempt={}", key, attempt);
+            result = publishingPipeline.publish(key, publication.trade());
         }
     }
-}
\ No newline at end of file
+
+    private record Publication(int index, String key, PlatformTrade trade, CompletableFuture<SendResult<Object, Object>> result) {
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.trades.model;
+
+/**
+ * Durable progress of a spooled upload. {@code offset} points at the first row whose
+ * Kafka send has not been acknowledged: a character offset for CSV files and a byte
+ * offset for JSON files. {@code contentSha256} and {@code size} identify the spooled file so a
+ * re-sent upload id can be checked against the content it was first used for.
+ */
+public class UploadCheckpoint {
+
+    private String uploadId;
+    private String filename;
+    private String contentSha256;
+    private long size;
+    private long offset;
+    private long rowsCompleted;
+    private boolean completed;
+
+    public String getUploadId() {
+        return uploadId;
+    }
+
+    public void setUploadId(String uploadId) {
+        this.uploadId = uploadId;
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public void setFilename(String filename) {
+        this.filename = filename;
+    }
+
+    public String getContentSha256() {
+        return contentSha256;
+    }
+
+    public void setContentSha256(String contentSha256) {
+        this.contentSha256 = contentSha256;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public void setOffset(long offset) {
+        this.offset = offset;
+    }
+
+    public long getRowsCompleted() {
+        return rowsCompleted;
+    }
+
+    public void setRowsCompleted(long rowsCompleted) {
+        this.rowsCompleted = rowsCompleted;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.trades.pipeline;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Preallocated single-producer / multi-consumer ring buffer in the style of the LMAX Disruptor.
+ * Slots are created once and reused; the producer claims a sequence with {@link #next()},
+ * fills the slot and makes it visible with {@link #publish(long)}. Each published event is
+ * handled by exactly one of the consumers, which claim work in batches through a shared
+ * work sequence. The producer never overwrites a slot that a consumer has not finished.
+ *
+ * <p>Only one thread may publish at a time; callers with several producers must serialize
+ * {@code next()}/{@code publish()} themselves.
+ */
+public class RingBuffer<E> {
+
+    private final Object[] entries;
+    private final int mask;
+    private final WaitStrategy waitStrategy;
+
+    /** Highest published sequence. */
+    private final AtomicLong cursor = new AtomicLong(-1);
+    /** Highest sequence claimed by any consumer. */
+    private final AtomicLong workSequence = new AtomicLong(-1);
+    /** Per consumer: every sequence at or below it that this consumer claimed is processed. */
+    private final AtomicLong[] consumerSequences;
+
+    private long nextSequence = 0;
+    private long cachedGatingSequence = -1;
+
+    public RingBuffer(int bufferSize, int consumers, WaitStrategy waitStrategy, Supplier<E> factory) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of 2");
+        }
+        if (consumers < 1) {
+            throw new IllegalArgumentException("consumers must be at least 1");
+        }
+        this.entries = new Object[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = factory.get();
+        }
+        this.mask = bufferSize - 1;
+        this.waitStrategy = waitStrategy;
+        this.consumerSequences = new AtomicLong[consumers];
+        for (int i = 0; i < consumers; i++) {
+            consumerSequences[i] = new AtomicLong(-1);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) (sequence & mask)];
+    }
+
+    /**
+     * Claims the next slot, waiting while the ring is full.
+     */
+    public long next() {
+        long sequence = nextSequence;
+        long wrapPoint = sequence - entries.length;
+        if (wrapPoint > cachedGatingSequence) {
+            long gating;
+            while (wrapPoint > (gating = minimumConsumerSequence())) {
+                LockSupport.parkNanos(1);
+            }
+            cachedGatingSequence = gating;
+        }
+        nextSequence = sequence + 1;
+        return sequence;
+    }
+
+    public void publish(long sequence) {
+        cursor.set(sequence);
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    /**
+     * True once every published event has been handled.
+     */
+    public boolean isDrained() {
+        return minimumConsumerSequence() >= cursor.get();
+    }
+
+    /**
+     * Wakes up consumers so they can observe a halt.
+     */
+    public void wakeConsumers() {
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    private long minimumConsumerSequence() {
+        long min = Long.MAX_VALUE;
+        for (AtomicLong sequence : consumerSequences) {
+            min = Math.min(min, sequence.get());
+        }
+        return min;
+    }
+
+    /**
+     * Loop for consumer {@code index}: claims up to {@code maxBatchSize} published events at a
+     * time and hands each to the handler until {@code halted} becomes true, which is checked
+     * before every event so a halt also cuts a claimed batch short.
+     */
+    public Runnable consumer(int index, int maxBatchSize, EventHandler<E> handler, BooleanSupplier halted) {
+        AtomicLong sequence = consumerSequences[index];
+        return () -> {
+            while (!halted.getAsBoolean()) {
+                long claimed = workSequence.get();
+                long low = claimed + 1;
+                long available = cursor.get();
+                long high = available >= low ? Math.min(available, low + maxBatchSize - 1) : low;
+                if (!workSequence.compareAndSet(claimed, high)) {
+                    continue;
+                }
+                // Everything this consumer claimed before `low` has been handled
+                sequence.set(low - 1);
+
+                if (available < high) {
+                    try {
+                        available = waitStrategy.waitFor(high, cursor, halted);
+                    } catch (InterruptedException ex) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    if (available < high) {
+                        return;
+                    }
+                }
+                for (long s = low; s <= high; s++) {
+                    // Re-checked per event: once halted, unhandled slots may be reclaimed by the owner
+                    if (halted.getAsBoolean()) {
+                        return;
+                    }
+                    handler.onEvent(get(s));
+                }
+                sequence.set(high);
+            }
+        };
+    }
+
+    public interface EventHandler<E> {
+
+        /**
+         * Handles one event. Must not throw; the slot is reused once this returns.
+         */
+        void onEvent(E event);
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.trades.pipeline;
+
+import com.example.trades.model.PlatformTrade;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reusable ring buffer slot carrying a transformed trade to the publishing stage.
+ */
+public class TradeEvent {
+
+    private String key;
+    private PlatformTrade trade;
+    private CompletableFuture<SendResult<Object, Object>> result;
+
+    public void set(String key, PlatformTrade trade, CompletableFuture<SendResult<Object, Object>> result) {
+        this.key = key;
+        this.trade = trade;
+        this.result = result;
+    }
+
+    public void clear() {
+        this.key = null;
+        this.trade = null;
+        this.result = null;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public PlatformTrade getTrade() {
+        return trade;
+    }
+
+    public CompletableFuture<SendResult<Object, Object>> getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,202 @@
+package com.example.trades.pipeline;
+
+import com.example.trades.model.PlatformTrade;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishing stage shared by the Kafka listener and file uploads. Callers transform trades on
+ * their own thread and hand them over through a {@link RingBuffer}; consumer threads drain it
+ * in batches, serialize to JSON and send to the outbound topic, so CPU-bound transformation
+ * overlaps with Kafka I/O.
+ *
+ * <p>With more than one consumer, trades may reach the topic in a different order than
+ * they were published.
+ */
+@Component
+public class TradePublishingPipeline implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(TradePublishingPipeline.class);
+
+    /** Start before the Kafka listener containers and web server, stop after they have drained. */
+    public static final int PHASE = Integer.MAX_VALUE - 4096;
+
+    private final KafkaTemplate<Object, Object> kafkaTemplate;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final String outboundTopic;
+    private final int consumers;
+    private final int maxBatchSize;
+    private final int bufferSize;
+    private final long sendTimeoutMillis;
+    private final RingBuffer<TradeEvent> ringBuffer;
+    private final ReentrantLock publishLock = new ReentrantLock();
+    private final List<Thread> consumerThreads = new ArrayList<>();
+
+    private volatile boolean running;
+    private volatile boolean halted;
+
+    public TradePublishingPipeline(KafkaTemplate<Object, Object> kafkaTemplate,
+                                   @Value("${app.kafka.outbound-topic:instructions.outbound}") String outboundTopic,
+                                   @Value("${app.pipeline.buffer-size:1024}") int bufferSize,
+                                   @Value("${app.pipeline.consumers:1}") int consumers,
+                                   @Value("${app.pipeline.max-batch-size:64}") int maxBatchSize,
+                                   @Value("${app.pipeline.wait-strategy:blocking}") String waitStrategy,
+                                   @Value("${app.pipeline.send-timeout-ms:30000}") long sendTimeoutMillis) {
+        this.kafkaTemplate = kafkaTemplate;
+        this.outboundTopic = outboundTopic;
+        this.consumers = consumers;
+        this.maxBatchSize = maxBatchSize;
+        this.bufferSize = bufferSize;
+        this.sendTimeoutMillis = sendTimeoutMillis;
+        this.ringBuffer = new RingBuffer<>(bufferSize, consumers, WaitStrategy.of(waitStrategy), TradeEvent::new);
+    }
+
+    /**
+     * Hands a transformed trade to the publishing stage, waiting while the buffer is full.
+     *
+     * @return completes when Kafka acknowledges the send, or exceptionally if it fails
+     */
+    public CompletableFuture<SendResult<Object, Object>> publish(String key, PlatformTrade trade) {
+        CompletableFuture<SendResult<Object, Object>> result = new CompletableFuture<>();
+        publishLock.lock();
+        try {
+            // Checked under the lock so nothing lands in the ring once stop() has begun draining
+            if (!running) {
+                throw new IllegalStateException("Trade publishing pipeline is not running");
+            }
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).set(key, trade, result);
+            ringBuffer.publish(sequence);
+        } finally {
+            publishLock.unlock();
+        }
+        return result;
+    }
+
+    /**
+     * How long callers should wait for a published trade to be acknowledged; also bounds the
+     * drain on shutdown.
+     */
+    public long getSendTimeoutMillis() {
+        return sendTimeoutMillis;
+    }
+
+    private void send(TradeEvent event) {
+        CompletableFuture<SendResult<Object, Object>> result = event.getResult();
+        if (result == null) {
+            // Already failed by stop()
+            return;
+        }
+        try {
+            String json = objectMapper.writeValueAsString(event.getTrade());
+            kafkaTemplate.send(outboundTopic, event.getKey(), json).whenComplete((sendResult, ex) -> {
+                if (ex != null) {
+                    result.completeExceptionally(ex);
+                } else {
+                    result.complete(sendResult);
+                }
+            });
+        } catch (Exception ex) {
+            result.completeExceptionally(ex);
+        } finally {
+            event.clear();
+        }
+    }
+
+    @Override
+    public void start() {
+        if (halted) {
+            throw new IllegalStateException("Trade publishing pipeline cannot be restarted");
+        }
+        for (int i = 0; i < consumers; i++) {
+            Thread thread = new Thread(ringBuffer.consumer(i, maxBatchSize, this::send, () -> halted),
+                    "trade-publisher-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            consumerThreads.add(thread);
+        }
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        // Waits for an in-flight publish, after which no further trade can enter the ring
+        publishLock.lock();
+        try {
+            running = false;
+        } finally {
+            publishLock.unlock();
+        }
+
+        long deadline = System.currentTimeMillis() + sendTimeoutMillis;
+        while (!ringBuffer.isDrained() && System.currentTimeMillis() < deadline) {
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        boolean drained = ringBuffer.isDrained();
+
+        halted = true;
+        ringBuffer.wakeConsumers();
+        for (Thread thread : consumerThreads) {
+            try {
+                thread.join(sendTimeoutMillis);
+                if (thread.isAlive()) {
+                    // Stuck in a send, e.g. blocked on producer metadata for up to max.block.ms
+                    thread.interrupt();
+                    thread.join(sendTimeoutMillis);
+                }
+                if (thread.isAlive()) {
+                    log.warn("Publishing thread {} did not stop within {} ms", thread.getName(), sendTimeoutMillis);
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        consumerThreads.clear();
+
+        if (!drained) {
+            log.warn("Stopping trade publishing pipeline with undelivered trades after {} ms", sendTimeoutMillis);
+            failUndelivered();
+        }
+    }
+
+    /**
+     * Fails the futures of trades still sitting in the ring so nobody waits on them forever.
+     * Handled slots are cleared, so any slot with a result was never sent. Consumers have
+     * been halted and joined by now; one that is still alive skips the cleared slots.
+     */
+    private void failUndelivered() {
+        IllegalStateException stopped = new IllegalStateException("Trade publishing pipeline stopped before sending");
+        for (int i = 0; i < bufferSize; i++) {
+            TradeEvent event = ringBuffer.get(i);
+            CompletableFuture<SendResult<Object, Object>> result = event.getResult();
+            if (result != null) {
+                result.completeExceptionally(stopped);
+                event.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.trades.pipeline;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/**
+ * How a consumer waits for the producer to publish a sequence. Trades latency against CPU:
+ * {@code blocking} parks on a condition, {@code sleeping} spins, yields and then parks briefly,
+ * {@code yielding} spins then yields, {@code busy-spin} never gives up the core.
+ */
+public interface WaitStrategy {
+
+    /**
+     * Waits until {@code cursor} reaches {@code sequence} or {@code halted} becomes true.
+     *
+     * @return the current cursor, which is below {@code sequence} only when halted
+     */
+    long waitFor(long sequence, AtomicLong cursor, BooleanSupplier halted) throws InterruptedException;
+
+    /**
+     * Wakes up consumers blocked in {@link #waitFor}; called after every publish.
+     */
+    default void signalAllWhenBlocking() {
+    }
+
+    static WaitStrategy of(String name) {
+        return switch (name.trim().toLowerCase(Locale.ROOT)) {
+            case "blocking" -> new Blocking();
+            case "sleeping" -> new Sleeping();
+            case "yielding" -> new Yielding();
+            case "busy-spin" -> new BusySpin();
+            default -> throw new IllegalArgumentException("Unknown wait strategy: " + name);
+        };
+    }
+
+    final class Blocking implements WaitStrategy {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition published = lock.newCondition();
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor, BooleanSupplier halted) throws InterruptedException {
+            if (cursor.get() < sequence) {
+                lock.lock();
+                try {
+                    while (cursor.get() < sequence && !halted.getAsBoolean()) {
+                        published.await();
+                    }
+                } finally {
+                    lock.unlock();
+                }
+            }
+            return cursor.get();
+        }
+
+        @Override
+        public void signalAllWhenBlocking() {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    final class Sleeping implements WaitStrategy {
+
+        private static final int RETRIES = 200;
+        private static final long SLEEP_NANOS = 100;
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor, BooleanSupplier halted) {
+            int counter = RETRIES;
+            long available;
+            while ((available = cursor.get()) < sequence && !halted.getAsBoolean()) {
+                if (counter > RETRIES / 2) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else if (counter > 0) {
+                    counter--;
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(SLEEP_NANOS);
+                }
+            }
+            return available;
+        }
+    }
+
+    final class Yielding implements WaitStrategy {
+
+        private static final int SPIN_TRIES = 100;
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor, BooleanSupplier halted) {
+            int counter = SPIN_TRIES;
+            long available;
+            while ((available = cursor.get()) < sequence && !halted.getAsBoolean()) {
+                if (counter > 0) {
+                    counter--;
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+            return available;
+        }
+    }
+
+    final class BusySpin implements WaitStrategy {
+
+        @Override
+        public long waitFor(long sequence, AtomicLong cursor, BooleanSupplier halted) {
+            long available;
+            while ((available = cursor.get()) < sequence && !halted.getAsBoolean()) {
+                Thread.onSpinWait();
+            }
+            return available;
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.example.trades.service;
+
+import com.example.trades.model.PlatformTrade;
+import com.example.trades.model.TradeInstruction;
+import com.example.trades.model.UploadCheckpoint;
+import com.example.trades.pipeline.TradePublishingPipeline;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Ingests uploaded CSV/JSON files from a spool directory with periodic durable checkpoints.
+ * A checkpoint only moves past rows whose Kafka send has been acknowledged, so resuming
+ * after a crash neither re-parses nor re-publishes completed rows.
+ */
+@Service
+public class FileIngestionService {
+
+    private static final Logger log = LoggerFactory.getLogger(FileIngestionService.class);
+    private static final Pattern UPLOAD_ID_PATTERN = Pattern.compile("^[A-Za-z0-9-]{1,64}$");
+    private static final TypeReference<Map<String, Object>> RAW_TRADE = new TypeReference<>() {};
+    private static final long END_OF_INPUT = Long.MAX_VALUE;
+
+    private final TradeTransformationService transformationService;
+    private final TradePublishingPipeline publishingPipeline;
+    private final UploadCheckpointStore checkpointStore;
+    private final Executor ingestionExecutor;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final int checkpointInterval;
+
+    public FileIngestionService(TradeTransformationService transformationService,
+                                TradePublishingPipeline publishingPipeline,
+                                UploadCheckpointStore checkpointStore,
+                                UploadIngestionExecutor ingestionExecutor,
+                                @Value("${app.ingest.checkpoint-interval:500}") int checkpointInterval) {
+        this.transformationService = transformationService;
+        this.publishingPipeline = publishingPipeline;
+        this.checkpointStore = checkpointStore;
+        this.ingestionExecutor = ingestionExecutor;
+        this.checkpointInterval = checkpointInterval;
+    }
+
+    public static boolean isSupported(String filename) {
+        String lower = filename.toLowerCase(Locale.ROOT);
+        return lower.endsWith(".csv") || lower.endsWith(".json");
+    }
+
+    public static boolean isValidUploadId(String uploadId) {
+        return UPLOAD_ID_PATTERN.matcher(uploadId).matches();
+    }
+
+    public boolean isKnownUpload(String uploadId) throws IOException {
+        return checkpointStore.load(uploadId).isPresent();
+    }
+
+    /**
+     * Spools and ingests a new upload. If the upload id is already known (the client re-sent
+     * the file after a failure) the spooled copy is resumed instead of starting over, provided
+     * the re-sent file has the same content.
+     *
+     * @return the trades published by this call
+     * @throws UploadConflictException if the id is being processed or was used for a different file
+     */
+    public List<PlatformTrade> ingest(String uploadId, MultipartFile file) throws IOException {
+        try (UploadCheckpointStore.UploadLock lock = reserve(uploadId)) {
+            Optional<UploadCheckpoint> existing = checkpointStore.load(uploadId);
+            if (existing.isEmpty()) {
+                checkpointStore.spool(uploadId, file);
+            } else if (!UploadCheckpointStore.matches(existing.get(), file)) {
+                throw new UploadConflictException(uploadId, "Upload " + uploadId + " was already used for a different file");
+            }
+            return ingestReserved(uploadId);
+        }
+    }
+
+    /**
+     * Continues an upload from its last checkpoint.
+     *
+     * @return the trades published by this call, empty if the upload had already completed
+     * @throws UploadConflictException if the id is already being processed
+     */
+    public List<PlatformTrade> resume(String uploadId) throws IOException {
+        try (UploadCheckpointStore.UploadLock lock = reserve(uploadId)) {
+            return ingestReserved(uploadId);
+        }
+    }
+
+    /**
+     * Locks the upload for the whole ingest or resume, including against other instances
+     * sharing the spool directory. Its checkpoint must only be read once the lock is held.
+     */
+    private UploadCheckpointStore.UploadLock reserve(String uploadId) throws IOException {
+        return checkpointStore.tryLock(uploadId).orElseThrow(() ->
+                new UploadConflictException(uploadId, "Upload " + uploadId + " is already being processed"));
+    }
+
+    private List<PlatformTrade> ingestReserved(String uploadId) throws IOException {
+        UploadCheckpoint checkpoint = checkpointStore.load(uploadId)
+                .orElseThrow(() -> new NoSuchElementException("Unknown upload: " + uploadId));
+        if (checkpoint.isCompleted()) {
+            return List.of();
+        }
+        if (checkpoint.getOffset() > 0) {
+            log.info("Resuming upload '{}' after {} rows at offset {}",
+                    uploadId, checkpoint.getRowsCompleted(), checkpoint.getOffset());
+        }
+        Path path = checkpointStore.spoolFile(uploadId);
+        boolean csv = checkpoint.getFilename().toLowerCase(Locale.ROOT).endsWith(".csv");
+        try (RowReader rows = csv ? openCsv(path, checkpoint.getOffset()) : openJson(path, checkpoint.getOffset())) {
+            return ingestRows(checkpoint, rows);
+        }
+    }
+
+    /**
+     * Purges expired completion records and picks up uploads that were interrupted by a restart.
+     * Runs on the {@link UploadIngestionExecutor}, which interrupts it on shutdown.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeIncompleteUploads() {
+        ingestionExecutor.execute(() -> {
+            try {
+                checkpointStore.purgeExpired();
+                for (UploadCheckpoint checkpoint : checkpointStore.findIncomplete()) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return;
+                    }
+                    try {
+                        List<PlatformTrade> trades = resume(checkpoint.getUploadId());
+                        log.info("Resumed upload '{}', published {} remaining trades", checkpoint.getUploadId(), trades.size());
+                    } catch (UploadConflictException ex) {
+                        log.info("Upload '{}' is already being resumed elsewhere", checkpoint.getUploadId());
+                    } catch (Exception ex) {
+                        log.warn("Failed to resume upload '{}'", checkpoint.getUploadId(), ex);
+                    }
+                }
+            } catch (IOException ex) {
+                log.warn("Failed to scan spool directory for incomplete uploads", ex);
+            }
+        });
+    }
+
+    private List<PlatformTrade> ingestRows(UploadCheckpoint checkpoint, RowReader rows) throws IOException {
+        List<PlatformTrade> trades = new ArrayList<>();
+        List<PendingSend> pending = new ArrayList<>();
+        Row row = null;
+        try {
+            row = rows.next();
+            while (row != null) {
+                if (Thread.interrupted()) {
+                    // Shutting down: stop reading, but still checkpoint what was acknowledged
+                    throw new InterruptedIOException("Ingestion of upload " + checkpoint.getUploadId() + " was interrupted");
+                }
+                if (pending.size() >= checkpointInterval) {
+                    checkpoint(checkpoint, pending, row.offset());
+                }
+
+                TradeInstruction canonical = transformationService.toCanonical(row.raw());
+                PlatformTrade accountingTrade = transformationService.toAccountingJson(canonical);
+                pending.add(new PendingSend(row.offset(), row.endOffset(),
+                        publishingPipeline.publish(canonical.getInstructionId(), accountingTrade)));
+                trades.add(accountingTrade);
+
+                // Cleared first so a parse failure is not attributed to the row just sent
+                row = null;
+                row = rows.next();
+            }
+        } catch (IOException | RuntimeException ex) {
+            // Keep whatever was acknowledged so a resume starts from the failing row
+            try {
+                checkpoint(checkpoint, pending, row != null ? row.offset() : -1);
+            } catch (Exception checkpointEx) {
+                ex.addSuppressed(checkpointEx);
+            }
+            if (ex instanceof InterruptedIOException) {
+                Thread.currentThread().interrupt();
+            }
+            throw ex;
+        }
+
+        checkpoint(checkpoint, pending, END_OF_INPUT);
+        checkpointStore.complete(checkpoint);
+        return trades;
+    }
+
+    /**
+     * Waits for pending sends in order and durably records the first row that is not yet
+     * acknowledged. {@code nextOffset} is where the row after the last pending one starts,
+     * or a negative value when it is unknown (e.g. that row failed to parse), in which case
+     * the end of the last acknowledged row is used if the reader knows it.
+     */
+    private void checkpoint(UploadCheckpoint checkpoint, List<PendingSend> pending, long nextOffset) throws IOException {
+        int acknowledged = 0;
+        Throwable failure = null;
+        for (PendingSend send : pending) {
+            try {
+                send.result().get(publishingPipeline.getSendTimeoutMillis(), TimeUnit.MILLISECONDS);
+                acknowledged++;
+            } catch (ExecutionException ex) {
+                failure = ex.getCause();
+                break;
+            } catch (TimeoutException ex) {
+                failure = ex;
+                break;
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                failure = ex;
+                break;
+            }
+        }
+
+        long resumeOffset = acknowledged < pending.size() ? pending.get(acknowledged).offset() : nextOffset;
+        if (resumeOffset < 0 && acknowledged > 0) {
+            resumeOffset = pending.get(acknowledged - 1).endOffset();
+        }
+        if (resumeOffset < 0 && acknowledged > 0) {
+            // End of the last acknowledged row is unknown, so leave it to be redone
+            acknowledged--;
+            resumeOffset = pending.get(acknowledged).offset();
+        }
+        if (acknowledged > 0) {
+            checkpoint.setOffset(resumeOffset);
+            checkpoint.setRowsCompleted(checkpoint.getRowsCompleted() + acknowledged);
+            checkpointStore.save(checkpoint);
+        }
+        pending.clear();
+
+        if (failure != null) {
+            throw new IllegalStateException("Failed to publish trade for upload " + checkpoint.getUploadId(), failure);
+        }
+    }
+
+    private RowReader openCsv(Path path, long offset) throws IOException {
+        CSVFormat format = CSVFormat.DEFAULT
+                .withFirstRecordAsHeader()
+                .withIgnoreEmptyLines();
+
+        if (offset == 0) {
+            return csvRows(format.parse(Files.newBufferedReader(path, StandardCharsets.UTF_8)));
+        }
+
+        // Read only the header, then jump straight to the checkpointed row
+        String[] header;
+        try (CSVParser headerParser = format.parse(Files.newBufferedReader(path, StandardCharsets.UTF_8))) {
+            header = headerParser.getHeaderNames().toArray(new String[0]);
+        }
+        BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8);
+        long remaining = offset;
+        while (remaining > 0) {
+            long skipped = reader.skip(remaining);
+            if (skipped <= 0) {
+                reader.close();
+                throw new EOFException("Checkpoint offset " + offset + " is beyond the end of " + path);
+            }
+            remaining -= skipped;
+        }
+        CSVFormat resumeFormat = CSVFormat.DEFAULT
+                .withHeader(header)
+                .withIgnoreEmptyLines();
+        return csvRows(new CSVParser(reader, resumeFormat, offset, 1));
+    }
+
+    private RowReader csvRows(CSVParser parser) {
+        Iterator<CSVRecord> records = parser.iterator();
+        return new RowReader() {
+            @Override
+            public Row next() {
+                if (!records.hasNext()) {
+                    return null;
+                }
+                CSVRecord record = records.next();
+                Map<String, Object> raw = new HashMap<>();
+                raw.put("instructionId", record.get("instructionId"));
+                raw.put("account_number", record.get("account_number"));
+                raw.put("security_id", record.get("security_id"));
+                raw.put("trade_type", record.get("trade_type"));
+                raw.put("quantity", record.get("quantity"));
+                raw.put("price", record.get("price"));
+                // The end of a CSV record is only known once the next one parses
+                return new Row(record.getCharacterPosition(), -1, raw);
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+    }
+
+    private RowReader openJson(Path path, long offset) throws IOException {
+        InputStream in = Files.newInputStream(path);
+        long base = 0;
+        if (offset > 0) {
+            // Jump to the checkpointed object, which may be preceded by the separator after the
+            // end of the last acknowledged one, and re-open the array in front of it
+            in.skipNBytes(offset);
+            PushbackInputStream pushback = new PushbackInputStream(in);
+            long skipped = skipSeparator(pushback);
+            in = new SequenceInputStream(new ByteArrayInputStream(new byte[]{'['}), pushback);
+            // Positions reported by the parser are shifted by the synthetic '['
+            base = offset + skipped - 1;
+        }
+        JsonParser parser = objectMapper.getFactory().createParser(in);
+        if (parser.nextToken() != JsonToken.START_ARRAY) {
+            parser.close();
+            throw new IOException("Expected a JSON array of trade instructions");
+        }
+        long shift = base;
+
+        return new RowReader() {
+            @Override
+            public Row next() throws IOException {
+                JsonToken token = parser.nextToken();
+                if (token == null || token == JsonToken.END_ARRAY) {
+                    return null;
+                }
+                long rowOffset = shift + parser.getTokenLocation().getByteOffset();
+                Map<String, Object> raw = parser.readValueAs(RAW_TRADE);
+                return new Row(rowOffset, shift + parser.getCurrentLocation().getByteOffset(), raw);
+            }
+
+            @Override
+            public void close() throws IOException {
+                parser.close();
+            }
+        };
+    }
+
+    /**
+     * Consumes whitespace and at most one ',' ahead of the next array element.
+     *
+     * @return the number of bytes consumed
+     */
+    private static long skipSeparator(PushbackInputStream in) throws IOException {
+        long skipped = 0;
+        boolean comma = false;
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == ',' && !comma) {
+                comma = true;
+            } else if (!Character.isWhitespace(b)) {
+                in.unread(b);
+                break;
+            }
+            skipped++;
+        }
+        return skipped;
+    }
+
+    private interface RowReader extends Closeable {
+
+        /**
+         * @return the next row, or {@code null} at end of input
+         */
+        Row next() throws IOException;
+    }
+
+    /**
+     * @param endOffset where the row ends, or a negative value if the reader cannot tell
+     */
+    private record Row(long offset, long endOffset, Map<String, Object> raw) {
+    }
+
+    private record PendingSend(long offset, long endOffset, CompletableFuture<?> result) {
+    }
+}
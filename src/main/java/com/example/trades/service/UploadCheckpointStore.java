@@ -0,0 +1,335 @@
+package com.example.trades.service;
+
+import com.example.trades.model.UploadCheckpoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * File-based store for spooled uploads and their checkpoints.
+ * Every write is flushed to disk and checkpoints are replaced atomically, with the directory
+ * itself forced after each rename so the new entries survive a crash. The spool directory
+ * should live on a volume that survives pod restarts.
+ * Completed uploads keep a small {@code .done} record, which reserves the upload id,
+ * until it is older than the configured retention. Uploads that have made no progress for
+ * longer than the incomplete retention are abandoned.
+ *
+ * <p>The directory may be shared by several instances; {@link #tryLock(String)} makes sure
+ * only one of them works on an upload at a time.
+ */
+@Component
+public class UploadCheckpointStore {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadCheckpointStore.class);
+    private static final String SPOOL_SUFFIX = ".upload";
+    private static final String CHECKPOINT_SUFFIX = ".checkpoint";
+    private static final String DONE_SUFFIX = ".done";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * Lock files held anywhere in this JVM. Checked before opening a lock file, because closing
+     * any channel on it would release the OS lock held through another one.
+     */
+    private static final Set<Path> HELD_LOCKS = ConcurrentHashMap.newKeySet();
+
+    private final Path spoolDir;
+    private final Duration completedRetention;
+    private final Duration incompleteRetention;
+
+    public UploadCheckpointStore(@Value("${app.ingest.spool-dir:${java.io.tmpdir}/trades-capture/spool}") String spoolDir,
+                                 @Value("${app.ingest.completed-retention:P7D}") Duration completedRetention,
+                                 @Value("${app.ingest.incomplete-retention:P2D}") Duration incompleteRetention) {
+        this.spoolDir = Paths.get(spoolDir);
+        this.completedRetention = completedRetention;
+        this.incompleteRetention = incompleteRetention;
+    }
+
+    public Path spoolFile(String uploadId) {
+        return spoolDir.resolve(uploadId + SPOOL_SUFFIX);
+    }
+
+    /**
+     * Takes an exclusive lock on the upload that holds across every process sharing the spool
+     * directory.
+     *
+     * @return the lock, to be closed when done, or empty if the upload is already locked
+     */
+    public Optional<UploadLock> tryLock(String uploadId) throws IOException {
+        Files.createDirectories(spoolDir);
+        Path path = spoolDir.resolve(uploadId + LOCK_SUFFIX).toAbsolutePath().normalize();
+        if (!HELD_LOCKS.add(path)) {
+            return Optional.empty();
+        }
+        FileChannel channel = null;
+        boolean locked = false;
+        try {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            // A lock file removed by purgeExpired() in the meantime no longer guards the id
+            locked = lock != null && Files.exists(path);
+            return locked ? Optional.of(new UploadLock(path, channel)) : Optional.empty();
+        } finally {
+            if (!locked) {
+                try {
+                    if (channel != null) {
+                        channel.close();
+                    }
+                } finally {
+                    HELD_LOCKS.remove(path);
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the upload to the spool directory and records an initial checkpoint at offset 0,
+     * together with the SHA-256 and size of the spooled content. Saving the checkpoint also
+     * forces the directory, which makes the spooled file's entry durable.
+     */
+    public UploadCheckpoint spool(String uploadId, MultipartFile file) throws IOException {
+        Files.createDirectories(spoolDir);
+        Path target = spoolFile(uploadId);
+        MessageDigest digest = sha256();
+        long size;
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest);
+             FileChannel channel = FileChannel.open(target,
+                     StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            size = in.transferTo(Channels.newOutputStream(channel));
+            channel.force(true);
+        }
+
+        UploadCheckpoint checkpoint = new UploadCheckpoint();
+        checkpoint.setUploadId(uploadId);
+        checkpoint.setFilename(file.getOriginalFilename());
+        checkpoint.setContentSha256(HexFormat.of().formatHex(digest.digest()));
+        checkpoint.setSize(size);
+        save(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * True if the file has the same size and SHA-256 as the content first spooled for the checkpoint.
+     */
+    public static boolean matches(UploadCheckpoint checkpoint, MultipartFile file) throws IOException {
+        if (checkpoint.getContentSha256() == null || checkpoint.getSize() != file.getSize()) {
+            return false;
+        }
+        MessageDigest digest = sha256();
+        try (InputStream in = new DigestInputStream(file.getInputStream(), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return checkpoint.getContentSha256().equals(HexFormat.of().formatHex(digest.digest()));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 not available", ex);
+        }
+    }
+
+    public Optional<UploadCheckpoint> load(String uploadId) throws IOException {
+        Path path = spoolDir.resolve(uploadId + DONE_SUFFIX);
+        if (!Files.exists(path)) {
+            path = spoolDir.resolve(uploadId + CHECKPOINT_SUFFIX);
+        }
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        Properties props = new Properties();
+        try (InputStream in = Files.newInputStream(path)) {
+            props.load(in);
+        }
+
+        UploadCheckpoint checkpoint = new UploadCheckpoint();
+        checkpoint.setUploadId(uploadId);
+        checkpoint.setFilename(props.getProperty("filename"));
+        checkpoint.setContentSha256(props.getProperty("contentSha256"));
+        checkpoint.setSize(Long.parseLong(props.getProperty("size", "0")));
+        checkpoint.setOffset(Long.parseLong(props.getProperty("offset", "0")));
+        checkpoint.setRowsCompleted(Long.parseLong(props.getProperty("rowsCompleted", "0")));
+        checkpoint.setCompleted(Boolean.parseBoolean(props.getProperty("completed", "false")));
+        return Optional.of(checkpoint);
+    }
+
+    /**
+     * Durably replaces the checkpoint: written to a temp file, forced to disk, then moved into place.
+     */
+    public void save(UploadCheckpoint checkpoint) throws IOException {
+        write(checkpoint, CHECKPOINT_SUFFIX);
+    }
+
+    private void write(UploadCheckpoint checkpoint, String suffix) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("filename", checkpoint.getFilename());
+        if (checkpoint.getContentSha256() != null) {
+            props.setProperty("contentSha256", checkpoint.getContentSha256());
+        }
+        props.setProperty("size", Long.toString(checkpoint.getSize()));
+        props.setProperty("offset", Long.toString(checkpoint.getOffset()));
+        props.setProperty("rowsCompleted", Long.toString(checkpoint.getRowsCompleted()));
+        props.setProperty("completed", Boolean.toString(checkpoint.isCompleted()));
+
+        Path target = spoolDir.resolve(checkpoint.getUploadId() + suffix);
+        Path tmp = spoolDir.resolve(checkpoint.getUploadId() + suffix + TMP_SUFFIX);
+        try (FileChannel channel = FileChannel.open(tmp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            OutputStream out = Channels.newOutputStream(channel);
+            props.store(out, null);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory();
+    }
+
+    /**
+     * Forces the spool directory so renames and newly created files are on disk, not only their content.
+     */
+    private void syncDirectory() throws IOException {
+        try (FileChannel dir = FileChannel.open(spoolDir, StandardOpenOption.READ)) {
+            dir.force(true);
+        }
+    }
+
+    /**
+     * Marks the upload as fully ingested, removes its spooled content and purges expired
+     * completion records.
+     */
+    public void complete(UploadCheckpoint checkpoint) throws IOException {
+        checkpoint.setCompleted(true);
+        write(checkpoint, DONE_SUFFIX);
+        Files.deleteIfExists(spoolDir.resolve(checkpoint.getUploadId() + CHECKPOINT_SUFFIX));
+        Files.deleteIfExists(spoolFile(checkpoint.getUploadId()));
+        purgeExpired();
+    }
+
+    /**
+     * Deletes completion records older than the completed retention, which frees their upload
+     * ids, and abandons uploads whose checkpoint has not moved for longer than the incomplete
+     * retention (e.g. a row that always fails, or a client that never resumed), so they are no
+     * longer resumed on every start. Also removes files a crash left behind: temp files,
+     * spooled content without a checkpoint and lock files of purged uploads. Uploads locked by
+     * another caller are left for a later purge.
+     */
+    public void purgeExpired() throws IOException {
+        if (!Files.isDirectory(spoolDir)) {
+            return;
+        }
+        // Upload ids cannot contain '.', so everything before the first one is the id
+        Set<String> uploadIds = new TreeSet<>();
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                int dot = name.indexOf('.');
+                if (dot > 0) {
+                    uploadIds.add(name.substring(0, dot));
+                }
+            }
+        }
+        for (String uploadId : uploadIds) {
+            Optional<UploadLock> lock = tryLock(uploadId);
+            if (lock.isPresent()) {
+                try (UploadLock held = lock.get()) {
+                    purge(uploadId, held);
+                }
+            }
+        }
+    }
+
+    private void purge(String uploadId, UploadLock held) throws IOException {
+        Path done = spoolDir.resolve(uploadId + DONE_SUFFIX);
+        Path checkpoint = spoolDir.resolve(uploadId + CHECKPOINT_SUFFIX);
+        // Nobody writes while the lock is held, so temp files are leftovers of a crash
+        Files.deleteIfExists(spoolDir.resolve(uploadId + DONE_SUFFIX + TMP_SUFFIX));
+        Files.deleteIfExists(spoolDir.resolve(uploadId + CHECKPOINT_SUFFIX + TMP_SUFFIX));
+
+        if (isOlderThan(done, completedRetention)) {
+            Files.delete(done);
+        }
+        if (isOlderThan(checkpoint, incompleteRetention)) {
+            log.warn("Abandoning upload '{}': no progress for more than {}", uploadId, incompleteRetention);
+            Files.delete(checkpoint);
+        }
+        if (!Files.exists(checkpoint)) {
+            // Completed, abandoned, or spooled without ever being checkpointed
+            Files.deleteIfExists(spoolFile(uploadId));
+            if (!Files.exists(done)) {
+                Files.deleteIfExists(held.path);
+            }
+        }
+    }
+
+    private static boolean isOlderThan(Path path, Duration retention) throws IOException {
+        return Files.exists(path)
+                && Files.getLastModifiedTime(path).toInstant().isBefore(Instant.now().minus(retention));
+    }
+
+    public List<UploadCheckpoint> findIncomplete() throws IOException {
+        List<UploadCheckpoint> result = new ArrayList<>();
+        if (!Files.isDirectory(spoolDir)) {
+            return result;
+        }
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            for (Path path : (Iterable<Path>) files::iterator) {
+                String name = path.getFileName().toString();
+                // Completed uploads live in .done files, so only in-flight checkpoints are read
+                if (name.endsWith(CHECKPOINT_SUFFIX)) {
+                    String uploadId = name.substring(0, name.length() - CHECKPOINT_SUFFIX.length());
+                    load(uploadId).filter(cp -> !cp.isCompleted()).ifPresent(result::add);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Exclusive hold on an upload, released on close.
+     */
+    public static final class UploadLock implements Closeable {
+
+        private final Path path;
+        private final FileChannel channel;
+
+        private UploadLock(Path path, FileChannel channel) {
+            this.path = path;
+            this.channel = channel;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                channel.close();
+            } finally {
+                HELD_LOCKS.remove(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.example.trades.service;
+
+/**
+ * Thrown when an upload id cannot be used right now: it is already being processed,
+ * or it was first used for a different file.
+ */
+public class UploadConflictException extends IllegalStateException {
+
+    private final String uploadId;
+
+    public UploadConflictException(String uploadId, String message) {
+        super(message);
+        this.uploadId = uploadId;
+    }
+
+    public String getUploadId() {
+        return uploadId;
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.trades.service;
+
+import com.example.trades.pipeline.TradePublishingPipeline;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs background upload ingestion, such as resuming interrupted uploads at startup, on its
+ * own thread. Stops before the publishing pipeline: running work is interrupted, records a
+ * checkpoint for what Kafka has acknowledged and is waited for, so nothing is still handing
+ * trades to the pipeline once it drains.
+ */
+@Component
+public class UploadIngestionExecutor implements Executor, SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(UploadIngestionExecutor.class);
+
+    /** Higher phases stop first. */
+    private static final int PHASE = TradePublishingPipeline.PHASE + 1;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "upload-ingestion");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final long stopTimeoutMillis;
+
+    private volatile boolean running;
+
+    public UploadIngestionExecutor(@Value("${app.pipeline.send-timeout-ms:30000}") long stopTimeoutMillis) {
+        this.stopTimeoutMillis = stopTimeoutMillis;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        executor.execute(command);
+    }
+
+    @Override
+    public void start() {
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(stopTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                log.warn("Upload ingestion did not stop within {} ms", stopTimeoutMillis);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+}
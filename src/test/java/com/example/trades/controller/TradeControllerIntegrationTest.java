@@ -16,11 +16,13 @@ import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 @SpringBootTest(classes = InstructionsCaptureApplication.class,
         webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
@@ -39,6 +41,7 @@ class TradeControllerIntegrationTest {
     @Test
     void uploadCsv_returnsAccountingTradesAndPublishesToKafka() throws IOException {
         String url = "http://localhost:" + port + "/api/trades/upload";
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
 
         ClassPathResource resource = new ClassPathResource("sample-trades.csv");
         byte[] bytes = resource.getInputStream().readAllBytes();
@@ -61,6 +64,7 @@ class TradeControllerIntegrationTest {
         ResponseEntity<String> response = restTemplate.postForEntity(url, requestEntity, String.class);
 
         assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertNotNull(response.getHeaders().getFirst("X-Upload-Id"));
         verify(kafkaTemplate, times(2)).send(anyString(), any(), any());
     }
 }
@@ -3,22 +3,28 @@ package com.example.trades.kafka;
 import com.example.trades.model.CanonicalTrade;
 import com.example.trades.model.PlatformTrade;
 import com.example.trades.model.TradeInstruction;
+import com.example.trades.pipeline.TradePublishingPipeline;
 import com.example.trades.service.TradeTransformationService;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.BatchListenerFailedException;
 import org.springframework.kafka.support.SendResult;
 import org.springframework.util.concurrent.ListenableFuture;
 import org.springframework.util.concurrent.SettableListenableFuture;
 
 import java.time.LocalDateTime;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.*;
 
@@ -31,12 +37,20 @@ class KafkaListenerTest {
     @Mock
     private KafkaTemplate<Object, Object> kafkaTemplate;
 
+    private TradePublishingPipeline pipeline;
     private KafkaListener listener;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @BeforeEach
     void setup() {
-        listener = new KafkaListener(transformationService, kafkaTemplate, "instructions.outbound");
+        pipeline = new TradePublishingPipeline(kafkaTemplate, "instructions.outbound", 16, 1, 8, "blocking", 5_000);
+        pipeline.start();
+        listener = new KafkaListener(transformationService, pipeline);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.stop();
     }
 
     @Test
@@ -84,9 +98,61 @@ class KafkaListenerTest {
         when(kafkaTemplate.send(anyString(), any(), any()))
                 .thenReturn(((ListenableFuture) future).completable());
 
-        listener.listen(message);
+        listener.listen(List.of(message));
 
         verify(kafkaTemplate, times(1))
                 .send(eq("instructions.outbound"), eq("ID-1"), anyString());
     }
-}
\ No newline at end of file
+
+    @Test
+    void listen_badMessageInBatch_failsAtItsIndexAfterDeliveringEarlierRecords() throws Exception {
+        stubTransformation();
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        List<String> messages = List.of(rawMessage("ID-1"), "not json", rawMessage("ID-3"));
+
+        BatchListenerFailedException ex = assertThrows(BatchListenerFailedException.class,
+                () -> listener.listen(messages));
+
+        assertEquals(1, ex.getIndex());
+        verify(kafkaTemplate, times(1)).send(eq("instructions.outbound"), eq("ID-1"), anyString());
+        verify(kafkaTemplate, never()).send(anyString(), eq("ID-3"), any());
+    }
+
+    @Test
+    void listen_failedSendIsRepublished() throws Exception {
+        stubTransformation();
+        when(kafkaTemplate.send(anyString(), any(), any()))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker unavailable")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        listener.listen(List.of(rawMessage("ID-1")));
+
+        verify(kafkaTemplate, times(2)).send(eq("instructions.outbound"), eq("ID-1"), anyString());
+    }
+
+    private String rawMessage(String instructionId) throws Exception {
+        Map<String, Object> raw = new HashMap<>();
+        raw.put("instructionId", instructionId);
+        raw.put("account_number", "123456789");
+        raw.put("security_id", "ABC123");
+        raw.put("trade_type", "Buy");
+        raw.put("quantity", 100);
+        return objectMapper.writeValueAsString(raw);
+    }
+
+    private void stubTransformation() {
+        when(transformationService.toCanonical(any())).thenAnswer(invocation -> {
+            Map<String, Object> raw = invocation.getArgument(0);
+            TradeInstruction canonical = new TradeInstruction();
+            canonical.setInstructionId((String) raw.get("instructionId"));
+            return canonical;
+        });
+        when(transformationService.toAccountingJson(any())).thenAnswer(invocation -> {
+            TradeInstruction canonical = invocation.getArgument(0);
+            PlatformTrade platformTrade = new PlatformTrade();
+            platformTrade.setPlatform_id(canonical.getInstructionId());
+            return platformTrade;
+        });
+    }
+}
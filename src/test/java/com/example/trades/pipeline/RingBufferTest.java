@@ -0,0 +1,62 @@
+package com.example.trades.pipeline;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RingBufferTest {
+
+    private static final int EVENTS = 10_000;
+
+    @ParameterizedTest
+    @ValueSource(strings = {"blocking", "sleeping", "yielding", "busy-spin"})
+    void everyEventIsHandledExactlyOnceAcrossWraparound(String waitStrategy) throws Exception {
+        int consumers = 3;
+        RingBuffer<AtomicLong> ringBuffer = new RingBuffer<>(8, consumers, WaitStrategy.of(waitStrategy), AtomicLong::new);
+        AtomicIntegerArray handled = new AtomicIntegerArray(EVENTS);
+        AtomicBoolean halted = new AtomicBoolean();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < consumers; i++) {
+            Thread thread = new Thread(ringBuffer.consumer(i, 4,
+                    slot -> handled.incrementAndGet((int) slot.get()), halted::get));
+            thread.start();
+            threads.add(thread);
+        }
+
+        for (int i = 0; i < EVENTS; i++) {
+            long sequence = ringBuffer.next();
+            ringBuffer.get(sequence).set(i);
+            ringBuffer.publish(sequence);
+        }
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!ringBuffer.isDrained() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        halted.set(true);
+        ringBuffer.wakeConsumers();
+        for (Thread thread : threads) {
+            thread.join(5_000);
+        }
+
+        assertTrue(ringBuffer.isDrained());
+        for (int i = 0; i < EVENTS; i++) {
+            assertEquals(1, handled.get(i), "event " + i);
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 6})
+    void rejectsBufferSizeThatIsNotAPowerOfTwo(int bufferSize) {
+        assertThrows(IllegalArgumentException.class,
+                () -> new RingBuffer<>(bufferSize, 1, WaitStrategy.of("blocking"), Object::new));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.trades.pipeline;
+
+import com.example.trades.model.PlatformTrade;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class TradePublishingPipelineTest {
+
+    private static final String TOPIC = "instructions.outbound";
+
+    @Mock
+    private KafkaTemplate<Object, Object> kafkaTemplate;
+
+    @Test
+    void stopWhilePublishing_everyAcceptedTradeCompletes() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        TradePublishingPipeline pipeline = new TradePublishingPipeline(kafkaTemplate, TOPIC, 8, 2, 4, "blocking", 5_000);
+        pipeline.start();
+
+        List<CompletableFuture<SendResult<Object, Object>>> accepted = new ArrayList<>();
+        AtomicBoolean rejected = new AtomicBoolean();
+        CountDownLatch publishing = new CountDownLatch(100);
+        Thread publisher = new Thread(() -> {
+            try {
+                for (int i = 0; ; i++) {
+                    accepted.add(pipeline.publish("K" + i, new PlatformTrade()));
+                    publishing.countDown();
+                }
+            } catch (IllegalStateException ex) {
+                rejected.set(true);
+            }
+        });
+        publisher.start();
+
+        assertTrue(publishing.await(5, TimeUnit.SECONDS));
+        pipeline.stop();
+        publisher.join(5_000);
+
+        assertFalse(publisher.isAlive());
+        assertTrue(rejected.get());
+        for (CompletableFuture<SendResult<Object, Object>> result : accepted) {
+            assertDoesNotThrow(() -> result.get(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void stop_failsTradesThatWereNotSentWithinTheTimeout() throws Exception {
+        CountDownLatch kafkaStuck = new CountDownLatch(1);
+        when(kafkaTemplate.send(anyString(), any(), any())).thenAnswer(invocation -> {
+            kafkaStuck.await();
+            return CompletableFuture.completedFuture(null);
+        });
+        TradePublishingPipeline pipeline = new TradePublishingPipeline(kafkaTemplate, TOPIC, 8, 1, 1, "blocking", 200);
+        pipeline.start();
+
+        try {
+            List<CompletableFuture<SendResult<Object, Object>>> results = new ArrayList<>();
+            for (int i = 0; i < 4; i++) {
+                results.add(pipeline.publish("K" + i, new PlatformTrade()));
+            }
+
+            pipeline.stop();
+
+            for (CompletableFuture<SendResult<Object, Object>> result : results) {
+                assertTrue(result.isCompletedExceptionally());
+            }
+            assertThrows(IllegalStateException.class, () -> pipeline.publish("late", new PlatformTrade()));
+        } finally {
+            kafkaStuck.countDown();
+        }
+    }
+
+    @Test
+    void stop_consumerStuckInSendDoesNotPublishFailedSlots() throws Exception {
+        CountDownLatch kafkaStuck = new CountDownLatch(1);
+        when(kafkaTemplate.send(anyString(), any(), any())).thenAnswer(invocation -> {
+            // Ignores interrupts, like a producer blocked on metadata
+            while (true) {
+                try {
+                    kafkaStuck.await();
+                    return CompletableFuture.completedFuture(null);
+                } catch (InterruptedException ignored) {
+                    // keep blocking
+                }
+            }
+        });
+        TradePublishingPipeline pipeline = new TradePublishingPipeline(kafkaTemplate, TOPIC, 8, 1, 4, "blocking", 200);
+        pipeline.start();
+
+        List<CompletableFuture<SendResult<Object, Object>>> results = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            results.add(pipeline.publish("K" + i, new PlatformTrade()));
+        }
+        pipeline.stop();
+        for (CompletableFuture<SendResult<Object, Object>> result : results) {
+            assertTrue(result.isCompletedExceptionally());
+        }
+
+        kafkaStuck.countDown();
+        verify(kafkaTemplate, after(500).times(1)).send(anyString(), any(), any());
+        verify(kafkaTemplate, never()).send(anyString(), isNull(), any());
+    }
+}
@@ -0,0 +1,266 @@
+package com.example.trades.service;
+
+import com.example.trades.model.PlatformTrade;
+import com.example.trades.model.UploadCheckpoint;
+import com.example.trades.pipeline.TradePublishingPipeline;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class FileIngestionServiceTest {
+
+    private static final String TOPIC = "instructions.outbound";
+
+    private static final String CSV = "instructionId,account_number,security_id,trade_type,quantity,price\n"
+            + "T1,123456789,abc123,Buy,100,10.5\n"
+            + "T2,987654321,xyz789,Sell,50,20.0\n"
+            + "T3,555566667,def456,Buy,10,1.0\n";
+
+    private static final String JSON = "[\n"
+            + "  {\"instructionId\": \"T1\", \"account_number\": \"123456789\", \"security_id\": \"abc123\", \"trade_type\": \"Buy\", \"quantity\": 100},\n"
+            + "  {\"instructionId\": \"T2\", \"account_number\": \"987654321\", \"security_id\": \"xyz789\", \"trade_type\": \"Sell\", \"quantity\": 50},\n"
+            + "  {\"instructionId\": \"T3\", \"account_number\": \"555566667\", \"security_id\": \"def456\", \"trade_type\": \"Buy\", \"quantity\": 10}\n"
+            + "]";
+
+    @TempDir
+    Path spoolDir;
+
+    @Mock
+    private KafkaTemplate<Object, Object> kafkaTemplate;
+
+    private TradePublishingPipeline pipeline;
+    private UploadCheckpointStore checkpointStore;
+    private UploadIngestionExecutor ingestionExecutor;
+    private FileIngestionService service;
+
+    @BeforeEach
+    void setup() {
+        checkpointStore = new UploadCheckpointStore(spoolDir.toString(), Duration.ofDays(7), Duration.ofDays(2));
+        pipeline = new TradePublishingPipeline(kafkaTemplate, TOPIC, 16, 1, 8, "blocking", 5_000);
+        pipeline.start();
+        ingestionExecutor = new UploadIngestionExecutor(5_000);
+        ingestionExecutor.start();
+        service = new FileIngestionService(new TradeTransformationService(), pipeline, checkpointStore, ingestionExecutor, 1);
+    }
+
+    @AfterEach
+    void tearDown() {
+        ingestionExecutor.stop();
+        pipeline.stop();
+    }
+
+    @Test
+    void ingest_publishesAllRowsAndCompletesUpload() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+
+        List<PlatformTrade> trades = service.ingest("upload-1", csvFile());
+
+        assertEquals(3, trades.size());
+        UploadCheckpoint checkpoint = checkpointStore.load("upload-1").orElseThrow();
+        assertTrue(checkpoint.isCompleted());
+        assertEquals(3, checkpoint.getRowsCompleted());
+        assertFalse(Files.exists(checkpointStore.spoolFile("upload-1")));
+    }
+
+    @Test
+    void resume_csvContinuesFromLastAcknowledgedRow() throws Exception {
+        failFirstSendOf("T2");
+
+        assertThrows(IllegalStateException.class, () -> service.ingest("upload-2", csvFile()));
+        UploadCheckpoint checkpoint = checkpointStore.load("upload-2").orElseThrow();
+        assertFalse(checkpoint.isCompleted());
+        assertEquals(1, checkpoint.getRowsCompleted());
+
+        List<PlatformTrade> resumed = service.resume("upload-2");
+
+        assertEquals(List.of("T2", "T3"), resumed.stream().map(PlatformTrade::getPlatform_id).toList());
+        verify(kafkaTemplate, times(1)).send(eq(TOPIC), eq("T1"), any());
+        assertTrue(checkpointStore.load("upload-2").orElseThrow().isCompleted());
+    }
+
+    @Test
+    void resume_jsonContinuesFromLastAcknowledgedRow() throws Exception {
+        failFirstSendOf("T3");
+
+        MockMultipartFile file = new MockMultipartFile("file", "trades.json", "application/json",
+                JSON.getBytes(StandardCharsets.UTF_8));
+        assertThrows(IllegalStateException.class, () -> service.ingest("upload-3", file));
+        assertEquals(2, checkpointStore.load("upload-3").orElseThrow().getRowsCompleted());
+
+        List<PlatformTrade> resumed = service.resume("upload-3");
+
+        assertEquals(List.of("T3"), resumed.stream().map(PlatformTrade::getPlatform_id).toList());
+        verify(kafkaTemplate, times(1)).send(eq(TOPIC), eq("T1"), any());
+        verify(kafkaTemplate, times(1)).send(eq(TOPIC), eq("T2"), any());
+    }
+
+    @Test
+    void resume_jsonAfterParseFailureRedoesOnlyTheFailingRow() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        String malformed = JSON.replace("\"security_id\": \"def456\"", "\"security_id\": ");
+
+        MockMultipartFile file = new MockMultipartFile("file", "trades.json", "application/json",
+                malformed.getBytes(StandardCharsets.UTF_8));
+        assertThrows(IOException.class, () -> service.ingest("upload-7", file));
+
+        UploadCheckpoint checkpoint = checkpointStore.load("upload-7").orElseThrow();
+        assertEquals(2, checkpoint.getRowsCompleted());
+        assertEquals(malformed.indexOf('}', malformed.indexOf("T2")) + 1, checkpoint.getOffset());
+
+        assertThrows(IOException.class, () -> service.resume("upload-7"));
+        verify(kafkaTemplate, times(1)).send(eq(TOPIC), eq("T1"), any());
+        verify(kafkaTemplate, times(1)).send(eq(TOPIC), eq("T2"), any());
+    }
+
+    @Test
+    void ingest_knownUploadIdResumesInsteadOfRepublishing() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        service.ingest("upload-4", csvFile());
+
+        List<PlatformTrade> again = service.ingest("upload-4", csvFile());
+
+        assertTrue(again.isEmpty());
+        verify(kafkaTemplate, times(3)).send(anyString(), any(), any());
+    }
+
+    @Test
+    void ingest_knownUploadIdWithDifferentFileIsRejected() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        service.ingest("upload-5", csvFile());
+
+        MockMultipartFile otherFile = new MockMultipartFile("file", "trades.csv", "text/csv",
+                CSV.replace("T3", "T4").getBytes(StandardCharsets.UTF_8));
+
+        assertThrows(UploadConflictException.class, () -> service.ingest("upload-5", otherFile));
+        verify(kafkaTemplate, never()).send(anyString(), eq("T4"), any());
+    }
+
+    @Test
+    void ingest_uploadLockedByAnotherProcessIsRejected() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        Process holder = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), LockHolder.class.getName(),
+                spoolDir.resolve("upload-8.lock").toString()).start();
+        try {
+            BufferedReader out = new BufferedReader(new InputStreamReader(holder.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("locked", out.readLine());
+
+            assertThrows(UploadConflictException.class, () -> service.ingest("upload-8", csvFile()));
+            assertFalse(Files.exists(checkpointStore.spoolFile("upload-8")));
+        } finally {
+            holder.destroy();
+            holder.waitFor();
+        }
+
+        assertEquals(3, service.ingest("upload-8", csvFile()).size());
+    }
+
+    @Test
+    void stop_interruptsBackgroundResumeAndKeepsItsCheckpoint() throws Exception {
+        checkpointStore.spool("upload-9", csvFile());
+        CountDownLatch t2Sent = new CountDownLatch(1);
+        when(kafkaTemplate.send(anyString(), any(), any())).thenAnswer(invocation -> {
+            if ("T2".equals(invocation.getArgument(1))) {
+                t2Sent.countDown();
+                return new CompletableFuture<>();
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+
+        service.resumeIncompleteUploads();
+        assertTrue(t2Sent.await(5, TimeUnit.SECONDS));
+        ingestionExecutor.stop();
+
+        UploadCheckpoint checkpoint = checkpointStore.load("upload-9").orElseThrow();
+        assertFalse(checkpoint.isCompleted());
+        assertEquals(1, checkpoint.getRowsCompleted());
+        verify(kafkaTemplate, never()).send(anyString(), eq("T3"), any());
+    }
+
+    @Test
+    void purgeExpired_releasesIdsOfOldCompletedUploads() throws Exception {
+        when(kafkaTemplate.send(anyString(), any(), any())).thenReturn(CompletableFuture.completedFuture(null));
+        service.ingest("upload-6", csvFile());
+        assertTrue(service.isKnownUpload("upload-6"));
+
+        Files.setLastModifiedTime(spoolDir.resolve("upload-6.done"),
+                FileTime.from(Instant.now().minus(Duration.ofDays(8))));
+        checkpointStore.purgeExpired();
+
+        assertFalse(service.isKnownUpload("upload-6"));
+        assertTrue(checkpointStore.findIncomplete().isEmpty());
+    }
+
+    /**
+     * Stands in for another instance sharing the spool directory: holds the lock until killed.
+     */
+    static class LockHolder {
+
+        public static void main(String[] args) throws Exception {
+            FileChannel channel = FileChannel.open(Path.of(args[0]), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            channel.lock();
+            System.out.println("locked");
+            System.in.read();
+        }
+    }
+
+    @Test
+    void purgeExpired_abandonsStalledUploadsAndRemovesLeftovers() throws Exception {
+        checkpointStore.spool("upload-10", csvFile());
+        Files.setLastModifiedTime(spoolDir.resolve("upload-10.checkpoint"),
+                FileTime.from(Instant.now().minus(Duration.ofDays(3))));
+        Files.writeString(spoolDir.resolve("upload-10.checkpoint.tmp"), "partial");
+        checkpointStore.spool("upload-11", csvFile());
+
+        checkpointStore.purgeExpired();
+
+        assertEquals(List.of("upload-11"), checkpointStore.findIncomplete().stream()
+                .map(UploadCheckpoint::getUploadId).toList());
+        try (Stream<Path> files = Files.list(spoolDir)) {
+            assertTrue(files.noneMatch(path -> path.getFileName().toString().startsWith("upload-10.")));
+        }
+    }
+
+    private MockMultipartFile csvFile() {
+        return new MockMultipartFile("file", "trades.csv", "text/csv", CSV.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void failFirstSendOf(String key) {
+        boolean[] failed = {false};
+        when(kafkaTemplate.send(anyString(), any(), any())).thenAnswer(invocation -> {
+            if (key.equals(invocation.getArgument(1)) && !failed[0]) {
+                failed[0] = true;
+                return CompletableFuture.failedFuture(new RuntimeException("broker unavailable"));
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+}